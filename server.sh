@@ -1,10 +1,18 @@
+# TRANSPORT=nio ./server.sh switches every hop to the NIO transport (default: rmi)
+TRANSPORT=${TRANSPORT:-rmi}
+OPTS="-Dauction.transport=$TRANSPORT"
 killall rmiregistry
+pkill -f NioRegistry
 sleep 1
 cd server/
-rmiregistry &
+if [ "$TRANSPORT" = "nio" ]; then
+    java NioRegistry &
+else
+    rmiregistry &
+fi
 sleep 1
-java FrontEnd &
-java Replica 1 &
-java Replica 2 &
-java Replica 3 &
-java Replica 4 &
+java $OPTS FrontEnd &
+java $OPTS Replica 1 &
+java $OPTS Replica 2 &
+java $OPTS Replica 3 &
+java $OPTS Replica 4 &
@@ -4,12 +4,16 @@ import java.security.PublicKey;
 
 public interface Auction extends Remote {
     public Integer register(String email, PublicKey pubKey) throws RemoteException;
+    public Integer register(String requestID, String email, PublicKey pubKey) throws RemoteException;
     public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException;
     public TokenInfo authenticate(int userID, byte signature[]) throws RemoteException;
     public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException;
     public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException;
+    public Integer newAuction(String requestID, int userID, AuctionSaleItem item, String token) throws RemoteException;
     public AuctionItem[] listItems(int userID, String token) throws RemoteException;
     public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException;
+    public AuctionResult closeAuction(String requestID, int userID, int itemID, String token) throws RemoteException;
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException;
+    public boolean bid(String requestID, int userID, int itemID, int price, String token) throws RemoteException;
     public int getPrimaryReplicaID() throws RemoteException;
 }
\ No newline at end of file
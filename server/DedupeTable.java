@@ -0,0 +1,84 @@
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Results of recently applied mutating calls, keyed by the caller's request ID.
+// A retried call whose ID is still in the table gets the original result back instead
+// of being applied a second time. Entries expire after ttlMillis and the oldest are
+// dropped once the table holds maxEntries. The table travels inside Payload, so a
+// backup that has a write also knows that write was already applied.
+public class DedupeTable implements java.io.Serializable {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // Oldest first
+
+    public static class Entry implements java.io.Serializable {
+        final String operation;
+        final Object result;
+        final long recordedAt;
+
+        Entry(String operation, Object result, long recordedAt) {
+            this.operation = operation;
+            this.result = result;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    public DedupeTable() {
+        this(Integer.getInteger("auction.dedupe.size", DEFAULT_MAX_ENTRIES),
+                Long.getLong("auction.dedupe.ttl", DEFAULT_TTL_MILLIS));
+    }
+
+    public DedupeTable(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Returns the recorded entry, or null if the request has not been applied (or has expired).
+    // A request ID reused for a different operation is rejected rather than replayed.
+    public synchronized Entry lookup(String operation, String requestID) throws RemoteException {
+        if (requestID == null) {
+            return null;
+        }
+        evict(System.currentTimeMillis());
+        Entry entry = entries.get(requestID);
+        if (entry != null && !entry.operation.equals(operation)) {
+            throw new RemoteException("Request ID " + requestID + " was already used for " + entry.operation + ", not " + operation);
+        }
+        return entry;
+    }
+
+    public synchronized void record(String operation, String requestID, Object result) {
+        if (requestID == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.put(requestID, new Entry(operation, result, now));
+        evict(now);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry oldest = iterator.next();
+            if (entries.size() <= maxEntries && now - oldest.recordedAt < ttlMillis) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    // Payloads carry a copy, as they are serialized after the replica's lock is released
+    public synchronized DedupeTable copy() {
+        DedupeTable copy = new DedupeTable(maxEntries, ttlMillis);
+        copy.entries.putAll(entries);
+        return copy;
+    }
+}
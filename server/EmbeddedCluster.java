@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Registry, FrontEnd and replicas all inside the current JVM, for benchmarks and failover tests.
+// start() returns once the FrontEnd is bound and its primary is elected; replicas are started
+// in-process by the FrontEnd's own failover logic and can be killed or restarted by ID.
+//
+// Usage: java EmbeddedCluster [rmi|nio] [replicas] [bench] - runs checkFailover() and checkDedupeEviction(),
+// or with bench, benchmark() instead
+public class EmbeddedCluster {
+    private static final int BENCHMARK_CALLS = 20000;
+    private static final int BENCHMARK_THREADS = 8;
+
+    private final String transportKind;
+    private final int replicaCount;
+    private final Map<Integer, Replica> replicas = new ConcurrentHashMap<>();
+    private Transport transport;
+    private Registry rmiRegistry;
+    private NioServer nioRegistry;
+    private FrontEnd frontEnd;
+
+    public EmbeddedCluster(String transportKind, int replicaCount) {
+        this.transportKind = transportKind;
+        this.replicaCount = replicaCount;
+    }
+
+    public synchronized void start() throws IOException {
+        int port = freePort();
+        if (transportKind.equalsIgnoreCase("nio")) {
+            nioRegistry = NioRegistry.start("localhost", port);
+            transport = new NioTransport("localhost", port);
+        } else {
+            rmiRegistry = LocateRegistry.createRegistry(port);
+            transport = new RmiTransport("localhost", port);
+        }
+        frontEnd = new FrontEnd(transport, this::startReplica, replicaCount);
+        transport.bind("FrontEnd", frontEnd);
+        System.out.println("(EC) Cluster ready: " + transportKind + " on port " + port + ", replicas " + getReplicaIDs());
+    }
+
+    public synchronized void stop() throws RemoteException {
+        for (Integer replicaID : getReplicaIDs()) {
+            killReplica(replicaID);
+        }
+        if (frontEnd != null) {
+            transport.unexport(frontEnd);
+            frontEnd = null;
+        }
+        if (rmiRegistry != null) {
+            UnicastRemoteObject.unexportObject(rmiRegistry, true);
+            rmiRegistry = null;
+        }
+        if (nioRegistry != null) {
+            nioRegistry.close();
+            nioRegistry = null;
+        }
+    }
+
+    // A client-side view of the cluster, going through the transport like a remote client would
+    public Auction client() throws RemoteException, NotBoundException {
+        return transport.lookup("FrontEnd");
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public Set<Integer> getReplicaIDs() {
+        return new TreeSet<>(replicas.keySet());
+    }
+
+    // Simulates a crash: the replica stops answering but its binding stays in the registry
+    public void killReplica(int replicaID) throws RemoteException {
+        Replica replica = replicas.remove(replicaID);
+        if (replica != null) {
+            replica.unexport();
+            System.out.println("(EC) Killed Auction_" + replicaID);
+        }
+    }
+
+    public void restartReplica(int replicaID) throws RemoteException {
+        killReplica(replicaID);
+        startReplica(replicaID);
+    }
+
+    // ReplicaLauncher for the FrontEnd: the replica is bound, and so ready, when this returns
+    private void startReplica(int replicaID) throws RemoteException {
+        Replica replica = new Replica(replicaID, transport);
+        replica.setShutdownAction(status -> {
+            try {
+                killReplica(replicaID);
+            } catch (RemoteException e) {
+                System.err.println("(EC) Error in shutting down Auction_" + replicaID + ": " + e.getMessage());
+            }
+        });
+        replica.export();
+        replicas.put(replicaID, replica);
+        System.out.println("Server ready as Auction_" + replicaID);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("Check failed: " + message);
+        }
+    }
+
+    // Writes through the FrontEnd and kills the primary in the middle of a write, after it has applied and
+    // replicated the write but before its reply goes out. The FrontEnd must fail over and retry on its own,
+    // the retry must replay the original result rather than apply again, and the earlier state must survive.
+    public void checkFailover() throws RemoteException, NotBoundException {
+        Auction client = client();
+        int primary = client.getPrimaryReplicaID();
+        int items = client.listItems(0, null).length;
+        AuctionSaleItem saleItem = new AuctionSaleItem();
+        saleItem.name = "Check item";
+        int itemID = client.newAuction("check-newAuction", 0, saleItem, null);
+
+        // IDs come from counters, so a write lost with the primary and re-applied by the retry would return
+        // the same userID; the backups are checked for it before the primary dies instead
+        AtomicBoolean replicated = new AtomicBoolean();
+        replicas.get(primary).setAfterReplicate(() -> {
+            replicated.set(backupsHaveEmail(primary, "check@auction"));
+            try {
+                killReplica(primary);
+            } catch (RemoteException e) {
+                System.err.println("(EC) Error in killing Auction_" + primary + ": " + e.getMessage());
+            }
+        });
+        long killed = System.nanoTime();
+        // Would fail with "Email already registered" if the FrontEnd's retry applied the write a second time
+        int userID = client.register("check-register", "check@auction", null);
+        long recovered = System.nanoTime();
+        check(!replicas.containsKey(primary), "Auction_" + primary + " was not killed during register");
+        check(replicated.get(), "register was not replicated before it returned");
+
+        int newPrimary = client.getPrimaryReplicaID();
+        check(newPrimary != primary, "Auction_" + primary + " is still primary after being killed");
+        boolean emailTaken = false;
+        try {
+            client.register("check-register-other", "check@auction", null);
+        } catch (ServerException e) {
+            emailTaken = true;
+        }
+        check(emailTaken, "register was lost in the failover");
+        check(client.register("check-register", "check@auction", null) == userID, "retried register was not replayed");
+        check(client.newAuction("check-newAuction", 0, saleItem, null) == itemID, "newAuction was applied twice");
+        check(client.listItems(userID, null).length == items, "auction items were lost in the failover");
+        // Fresh requests carry on from the surviving counters, not from an empty replica
+        check(client.register("check-register-2", "check2@auction", null) == userID + 1, "user IDs restarted after failover");
+        check(client.newAuction("check-newAuction-2", userID, saleItem, null) == itemID + 1, "item IDs restarted after failover");
+
+        System.out.println("(EC) Failover Auction_" + primary + " -> Auction_" + newPrimary + " mid-call: " + (recovered - killed) / 1000000 + "ms, retried writes not re-applied");
+    }
+
+    private boolean backupsHaveEmail(int primary, String email) {
+        for (Map.Entry<Integer, Replica> entry : replicas.entrySet()) {
+            if (entry.getKey() != primary && !entry.getValue().getpayload().userInfo.containsValue(email)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Runs a cluster of its own with a tiny dedupe table. A request ID pushed out by newer ones, or older
+    // than the TTL, is applied again when retried, while recent IDs still replay their original result.
+    public static void checkDedupeEviction(String transportKind, int replicaCount) throws Exception {
+        int size = 3;
+        long ttl = 2000;
+        String oldSize = System.getProperty("auction.dedupe.size");
+        String oldTtl = System.getProperty("auction.dedupe.ttl");
+        System.setProperty("auction.dedupe.size", String.valueOf(size));
+        System.setProperty("auction.dedupe.ttl", String.valueOf(ttl));
+        EmbeddedCluster cluster = new EmbeddedCluster(transportKind, replicaCount);
+        try {
+            cluster.start();
+            Auction client = cluster.client();
+            AuctionSaleItem saleItem = new AuctionSaleItem();
+            saleItem.name = "Eviction item";
+
+            // Size bound: size newer requests push the first one out
+            int first = client.newAuction("evict-0", 0, saleItem, null);
+            for (int i = 1; i <= size; i++) {
+                client.newAuction("evict-" + i, 0, saleItem, null);
+            }
+            check(client.newAuction("evict-" + size, 0, saleItem, null) == first + size, "recent request was not replayed");
+            check(client.newAuction("evict-0", 0, saleItem, null) == first + size + 1, "request beyond auction.dedupe.size was replayed");
+
+            // TTL: replayed while fresh, applied again once expired
+            int fresh = client.newAuction("expire", 0, saleItem, null);
+            check(client.newAuction("expire", 0, saleItem, null) == fresh, "request within auction.dedupe.ttl was not replayed");
+            Thread.sleep(ttl + 500);
+            check(client.newAuction("expire", 0, saleItem, null) == fresh + 1, "request older than auction.dedupe.ttl was replayed");
+        } finally {
+            cluster.stop();
+            restoreProperty("auction.dedupe.size", oldSize);
+            restoreProperty("auction.dedupe.ttl", oldTtl);
+        }
+        System.out.println("(EC) Dedupe eviction: size " + size + " and TTL " + ttl + "ms honoured");
+    }
+
+    private static void restoreProperty(String key, String value) {
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+    // Transport overhead: calls straight to the primary, with no FrontEnd and no replication behind them.
+    // getPrimaryReplicaID carries no data, listItems returns model objects; both run one caller after
+    // another for latency, then from several threads at once over the same transport for throughput.
+    public void benchmark(int calls, int threads) throws Exception {
+        int primary = client().getPrimaryReplicaID();
+        Auction replica = transport.lookup("Auction_" + primary);
+        for (int i = 0; i < calls; i++) { // Warm-up: JIT, connections, stub caches
+            replica.getPrimaryReplicaID();
+            replica.listItems(0, null);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            replica.getPrimaryReplicaID();
+        }
+        long idLatency = (System.nanoTime() - started) / calls;
+        started = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            replica.listItems(0, null);
+        }
+        long listLatency = (System.nanoTime() - started) / calls;
+
+        Thread[] callers = new Thread[threads];
+        Exception[] failure = new Exception[1];
+        for (int t = 0; t < threads; t++) {
+            callers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < calls; i++) {
+                        replica.getPrimaryReplicaID();
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+        }
+        started = System.nanoTime();
+        for (Thread caller : callers) {
+            caller.start();
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        long elapsed = System.nanoTime() - started;
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        System.out.println("(EC) Benchmark " + transportKind + ": getPrimaryReplicaID " + idLatency / 1000.0 + "us, listItems "
+                + listLatency / 1000.0 + "us, " + threads + " threads " + (long) calls * threads * 1000000000L / elapsed + " calls/s");
+    }
+
+    public static void main(String[] args) {
+        String kind = args.length > 0 ? args[0] : "rmi";
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : FrontEnd.DEFAULT_REPLICAS;
+        EmbeddedCluster cluster = new EmbeddedCluster(kind, n);
+        int status = 0;
+        try {
+            long started = System.nanoTime();
+            cluster.start();
+            long ready = System.nanoTime();
+            System.out.println("(EC) Startup: " + (ready - started) / 1000000 + "ms");
+
+            if (args.length > 2 && args[2].equals("bench")) {
+                cluster.benchmark(BENCHMARK_CALLS, BENCHMARK_THREADS);
+                cluster.stop();
+            } else {
+                cluster.checkFailover();
+                System.out.println("(EC) Failover check passed");
+                cluster.stop();
+
+                checkDedupeEviction(kind, n);
+                System.out.println("(EC) Dedupe eviction check passed");
+            }
+        } catch (Exception e) {
+            System.err.println("Exception:");
+            e.printStackTrace();
+            status = 1;
+        }
+        System.exit(status);
+    }
+}
@@ -1,18 +1,24 @@
+import java.io.EOFException;
+import java.net.SocketException;
+import java.rmi.MarshalException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
 import java.security.PublicKey;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class FrontEnd implements Auction {
     private int primaryID;
-    private final int n = 4; // Number of replicas to maintain
-    private static HashMap<Integer, String> replicaTable;
+    public static final int DEFAULT_REPLICAS = 4;
+    private final int n; // Number of replicas to maintain
+    private HashMap<Integer, String> replicaTable;
+    private final Transport transport;
+    private final ReplicaLauncher launcher;
 
     private void fixReplica() {
         if (primaryID == -1) {
@@ -22,15 +28,14 @@ public class FrontEnd implements Auction {
 
             for (int i = 0; i <= n; i++) {
                 try {
-                    System.out.println("FE: java Replica " + i + " &");
-                    Runtime.getRuntime().exec("java Replica " + i + " &");
+                    launcher.launch(i);
                 } catch (Exception e) {
                     System.err.println("(FE) Error in starting new replica: " + e.getMessage());
                 }
             }
 
+            DiscoverReplicas(); // Throws if not a single replica came up
             try {
-                DiscoverReplicas();
                 System.out.println("(FE) Invoking challenge: -2, Init");
                 InvokePrimary().challenge(-2, "Init"); // Launch check
                 System.out.println("(Fix) PR_Launch: Auction_" + primaryID + " is alive.");
@@ -44,7 +49,7 @@ public class FrontEnd implements Auction {
             System.out.println("PrimaryID: " + primaryID);
             this.primaryID = (findMaxKeyValue(replicaTable) + 1);
             try {
-                Runtime.getRuntime().exec("java Replica " + primaryID);
+                launcher.launch(primaryID);
             } catch (Exception e) {
                 System.err.println("(FE) Error in starting new primary replica: " + e.getMessage());
             }
@@ -53,9 +58,10 @@ public class FrontEnd implements Auction {
             DiscoverReplicas();
             //count alive replicas from replicaTable and spawn new
             int alive = checkAliveReplicas();
+            int nextID = findMaxKeyValue(replicaTable) + 1; // Never reuse the new primary's ID
             for(int i = 0; i < n - alive; i++){
                 try {
-                    Runtime.getRuntime().exec("java Replica " + (findMaxKeyValue(replicaTable) + i));
+                    launcher.launch(nextID + i);
                 } catch (Exception e) {
                     System.err.println("(FE) Error in starting new replica: " + e.getMessage());
                 }
@@ -66,21 +72,32 @@ public class FrontEnd implements Auction {
         DiscoverReplicas();
 
         // Broadcast the new primary replica ID to all replicas
-        try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            for (Map.Entry<Integer, String> entry : replicaTable.entrySet()) {
+        for (Map.Entry<Integer, String> entry : replicaTable.entrySet()) {
+            // A stale binding of a dead replica must not stop the rest from hearing about the new primary
+            try {
                 String replicaName = entry.getValue();
-                Auction replica = (Auction) registry.lookup(replicaName);
+                Auction replica = transport.lookup(replicaName);
                 System.out.println("(FE) Broadcasting new primary replica: " + primaryID);
                 System.out.println("(FE) Invoking challenge: " + primaryID + ", NewPrimary");
                 replica.challenge(primaryID, "NewPrimary");
+            } catch (Exception e) {
+                System.err.println("Error in broadcasting new primary replica to " + entry.getValue() + ": " + e.getMessage());
             }
-        } catch (Exception e) {
-            System.err.println("Error in broadcasting new primary replica: " + e.getMessage());
         }
     }
 
     public FrontEnd() {
+        this(Transport.fromSystemProperties());
+    }
+
+    public FrontEnd(Transport transport) {
+        this(transport, new ProcessReplicaLauncher(transport), DEFAULT_REPLICAS);
+    }
+
+    public FrontEnd(Transport transport, ReplicaLauncher launcher, int replicas) {
+        this.transport = transport;
+        this.launcher = launcher;
+        this.n = replicas;
         this.primaryID = -1;
         replicaTable = new HashMap<>();
         fixReplica();
@@ -89,51 +106,53 @@ public class FrontEnd implements Auction {
     private Auction InvokePrimary() throws RemoteException {
         String replicaName = "Auction_" + primaryID;
         System.out.println("(FE) Invoking primary replica: " + replicaName);
+        Auction replica;
+        ChallengeInfo health;
         try {
-                Registry registry = LocateRegistry.getRegistry("localhost");
-                Auction replica = (Auction) registry.lookup(replicaName);
-                System.out.println("(FE) Invoking challenge: " + primaryID + ", Primary");
-                if (replica.challenge(primaryID, "Primary") == null){
-                    // Health check
-                    System.out.println("(FE) Invoke" + replicaName + " = PASS, returning - " + replicaName);
-                    return replica;
-                } else {
-                    System.err.println("(FE) Invoke" + replicaName + " = FAIL. FE issue? Exiting...");
-                    System.exit(1);
-                    return null;
-                }
-            } catch (Exception e) {
-                System.err.println("(FE) Invoke: PrimaryReplica " + replicaName + " failed, re-electing.");
-                fixReplica(); // Fixing the failed replica
-                return InvokePrimary(); // Recursive call to invoke the new primary replica
-            }
+            replica = transport.lookup(replicaName);
+            System.out.println("(FE) Invoking challenge: " + primaryID + ", Primary");
+            health = replica.challenge(primaryID, "Primary");
+        } catch (Exception e) {
+            System.err.println("(FE) Invoke: PrimaryReplica " + replicaName + " failed, re-electing.");
+            fixReplica(); // Fixing the failed replica
+            return InvokePrimary(); // Recursive call to invoke the new primary replica
+        }
+        // Health check: a replica answers with null, anything else means FrontEnd and replica disagree
+        if (health != null) {
+            System.err.println("(FE) Invoke" + replicaName + " = FAIL. FE issue?");
+            throw new IllegalStateException("Primary replica " + replicaName + " failed its health check");
+        }
+        System.out.println("(FE) Invoke" + replicaName + " = PASS, returning - " + replicaName);
+        return replica;
     }
 
     public void DiscoverReplicas() {
+        String[] boundNames;
         try {
             System.out.println("(FE) Discovering Replicas...");
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            String[] boundNames = registry.list();
-            if (boundNames.length == 0) {
-                System.out.println("(FE) FATAL ERROR RMI IS EMPTY. Exiting...");
-                System.exit(1);
-            }
-            // Pattern to match "Auction_#" names
-            Pattern pattern = Pattern.compile("Auction_(\\d+)");
-            for (String name : boundNames) {
-                Matcher matcher = pattern.matcher(name);
-                if (matcher.find()) {
-                    // Extract ID and add to replicaTable
-                    int id = Integer.parseInt(matcher.group(1));
-                    replicaTable.put(id, name);
-                }
-            }
-            // Optionally, print out the discovered replicas
-            System.out.println("(FE) Discovered Replicas: " + replicaTable);
-        } catch (Exception e) {
+            boundNames = transport.list();
+        } catch (RemoteException e) {
             System.err.println("(FE) Exception in DiscoverReplicas: " + e.toString());
             e.printStackTrace();
+            return;
         }
+        if (boundNames.length == 0) {
+            // Not one replica could be started, failing over again would only loop
+            System.out.println("(FE) FATAL ERROR RMI IS EMPTY.");
+            throw new IllegalStateException("No replicas are bound in the registry");
+        }
+        // Pattern to match "Auction_#" names
+        Pattern pattern = Pattern.compile("Auction_(\\d+)");
+        for (String name : boundNames) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.find()) {
+                // Extract ID and add to replicaTable
+                int id = Integer.parseInt(matcher.group(1));
+                replicaTable.put(id, name);
+            }
+        }
+        // Optionally, print out the discovered replicas
+        System.out.println("(FE) Discovered Replicas: " + replicaTable);
     }
 
     private int checkAliveReplicas() {
@@ -145,8 +164,7 @@ public class FrontEnd implements Auction {
             Map.Entry<Integer, String> entry = iterator.next();
             try {
                 String replicaName = entry.getValue();
-                Registry registry = LocateRegistry.getRegistry("localhost");
-                Auction replica = (Auction) registry.lookup(replicaName);
+                Auction replica = transport.lookup(replicaName);
                 replica.authenticate(-1, null); // Assuming this method exists in the Auction interface
                 aliveCount++;
             } catch (Exception e) {
@@ -172,18 +190,49 @@ public class FrontEnd implements Auction {
         try{
             return InvokePrimary().getPrimaryReplicaID();
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
             return InvokePrimary().getPrimaryReplicaID();
         }
     }
 
+    // Only a ServerException or ServerError proves the primary took the call and answered it; it carries an
+    // application error (e.g. "Email already registered") that goes back to the caller. Anything else, including
+    // a reply cut off by a crash mid-call (UnmarshalException over an EOFException), may be a dead primary.
+    // Arguments that cannot be marshalled are the caller's problem and would fail on every replica alike.
+    private static boolean isConnectionFailure(RemoteException e) {
+        if (e instanceof ServerException || e instanceof ServerError) {
+            return false;
+        }
+        if (e instanceof MarshalException) {
+            return e.getCause() instanceof EOFException || e.getCause() instanceof SocketException;
+        }
+        return true;
+    }
+
+    // Mutating calls without a client-supplied request ID get one here, so the
+    // failover retry below cannot apply a write the old primary already applied.
+    private static String newRequestID() {
+        return UUID.randomUUID().toString();
+    }
+
     @Override
     public Integer register(String email, PublicKey pubKey) throws RemoteException {
+        return register(newRequestID(), email, pubKey);
+    }
+
+    @Override
+    public Integer register(String requestID, String email, PublicKey pubKey) throws RemoteException {
         try {
-            return InvokePrimary().register(email, pubKey);
+            return InvokePrimary().register(requestID, email, pubKey);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
-            return InvokePrimary().register(email, pubKey);
+            return InvokePrimary().register(requestID, email, pubKey);
         }
     }
 
@@ -192,6 +241,9 @@ public class FrontEnd implements Auction {
         try {
             return InvokePrimary().challenge(userID, clientChallenge);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
             return InvokePrimary().challenge(userID, clientChallenge);
         }
@@ -203,6 +255,9 @@ public class FrontEnd implements Auction {
         try {
             return InvokePrimary().authenticate(userID, signature);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
             return InvokePrimary().authenticate(userID, signature);
         }
@@ -214,6 +269,9 @@ public class FrontEnd implements Auction {
         try {
             return InvokePrimary().getSpec(userID, itemID, token);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
             return InvokePrimary().getSpec(userID, itemID, token);
         }
@@ -221,11 +279,19 @@ public class FrontEnd implements Auction {
 
     @Override
     public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException {
+        return newAuction(newRequestID(), userID, item, token);
+    }
+
+    @Override
+    public Integer newAuction(String requestID, int userID, AuctionSaleItem item, String token) throws RemoteException {
         try {
-            return InvokePrimary().newAuction(userID, item, token);
+            return InvokePrimary().newAuction(requestID, userID, item, token);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
-            return InvokePrimary().newAuction(userID, item, token);
+            return InvokePrimary().newAuction(requestID, userID, item, token);
         }
     }
 
@@ -234,6 +300,9 @@ public class FrontEnd implements Auction {
         try {
             return InvokePrimary().listItems(userID, token);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
             return InvokePrimary().listItems(userID, token);
         }
@@ -241,21 +310,37 @@ public class FrontEnd implements Auction {
 
     @Override
     public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException {
+        return closeAuction(newRequestID(), userID, itemID, token);
+    }
+
+    @Override
+    public AuctionResult closeAuction(String requestID, int userID, int itemID, String token) throws RemoteException {
         try {
-            return InvokePrimary().closeAuction(userID, itemID, token);
+            return InvokePrimary().closeAuction(requestID, userID, itemID, token);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
-            return InvokePrimary().closeAuction(userID, itemID, token);
+            return InvokePrimary().closeAuction(requestID, userID, itemID, token);
         }
     }
 
     @Override
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException {
+        return bid(newRequestID(), userID, itemID, price, token);
+    }
+
+    @Override
+    public boolean bid(String requestID, int userID, int itemID, int price, String token) throws RemoteException {
         try {
-            return InvokePrimary().bid(userID, itemID, price, token);
+            return InvokePrimary().bid(requestID, userID, itemID, price, token);
         } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
             fixReplica(); // Failover to another replica
-            return InvokePrimary().bid(userID, itemID, price, token);
+            return InvokePrimary().bid(requestID, userID, itemID, price, token);
         }
     }
 
@@ -277,9 +362,7 @@ public class FrontEnd implements Auction {
         try {
             FrontEnd frontEnd = new FrontEnd();
             String name = "FrontEnd";
-            Auction stub = (Auction) UnicastRemoteObject.exportObject(frontEnd, 0);
-            Registry registry = LocateRegistry.getRegistry();
-            registry.rebind(name, stub);
+            frontEnd.transport.bind(name, frontEnd);
             System.out.println("FrontEnd ready");
         } catch (Exception e) {
             System.err.println("Exception:");
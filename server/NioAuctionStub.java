@@ -0,0 +1,124 @@
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.security.PublicKey;
+
+// Client-side Auction proxy for the NIO transport, plus the matching server-side dispatch.
+public class NioAuctionStub implements Auction {
+    private final NioConnection connection;
+
+    public NioAuctionStub(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    // Server side: maps an incoming operation onto the exported Auction
+    public static NioServer.Handler skeleton(Auction target) {
+        return new NioServer.Handler() {
+            @Override
+            public Object handle(byte op, Object[] args, InetAddress peer) throws Exception {
+                switch (op) {
+                    case NioProtocol.REGISTER:
+                        return target.register((String) args[0], (PublicKey) args[1]);
+                    case NioProtocol.CHALLENGE:
+                        return target.challenge((Integer) args[0], (String) args[1]);
+                    case NioProtocol.AUTHENTICATE:
+                        return target.authenticate((Integer) args[0], (byte[]) args[1]);
+                    case NioProtocol.GET_SPEC:
+                        return target.getSpec((Integer) args[0], (Integer) args[1], (String) args[2]);
+                    case NioProtocol.NEW_AUCTION:
+                        return target.newAuction((Integer) args[0], (AuctionSaleItem) args[1], (String) args[2]);
+                    case NioProtocol.LIST_ITEMS:
+                        return target.listItems((Integer) args[0], (String) args[1]);
+                    case NioProtocol.CLOSE_AUCTION:
+                        return target.closeAuction((Integer) args[0], (Integer) args[1], (String) args[2]);
+                    case NioProtocol.BID:
+                        return target.bid((Integer) args[0], (Integer) args[1], (Integer) args[2], (String) args[3]);
+                    case NioProtocol.GET_PRIMARY_REPLICA_ID:
+                        return target.getPrimaryReplicaID();
+                    case NioProtocol.REGISTER_WITH_ID:
+                        return target.register((String) args[0], (String) args[1], (PublicKey) args[2]);
+                    case NioProtocol.NEW_AUCTION_WITH_ID:
+                        return target.newAuction((String) args[0], (Integer) args[1], (AuctionSaleItem) args[2], (String) args[3]);
+                    case NioProtocol.CLOSE_AUCTION_WITH_ID:
+                        return target.closeAuction((String) args[0], (Integer) args[1], (Integer) args[2], (String) args[3]);
+                    case NioProtocol.BID_WITH_ID:
+                        return target.bid((String) args[0], (Integer) args[1], (Integer) args[2], (Integer) args[3], (String) args[4]);
+                    default:
+                        throw new RemoteException("Unknown operation: " + op);
+                }
+            }
+
+            // A Replica answers these from its own state. Not the FrontEnd, which forwards every call
+            // to the primary, and not the rest, which may sync with replicas that call straight back.
+            @Override
+            public boolean isInline(byte op) {
+                return target instanceof Replica && (op == NioProtocol.GET_PRIMARY_REPLICA_ID
+                        || op == NioProtocol.AUTHENTICATE || op == NioProtocol.LIST_ITEMS);
+            }
+        };
+    }
+
+    @Override
+    public Integer register(String email, PublicKey pubKey) throws RemoteException {
+        return (Integer) connection.call(NioProtocol.REGISTER, email, pubKey);
+    }
+
+    @Override
+    public Integer register(String requestID, String email, PublicKey pubKey) throws RemoteException {
+        return (Integer) connection.call(NioProtocol.REGISTER_WITH_ID, requestID, email, pubKey);
+    }
+
+    @Override
+    public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException {
+        return (ChallengeInfo) connection.call(NioProtocol.CHALLENGE, userID, clientChallenge);
+    }
+
+    @Override
+    public TokenInfo authenticate(int userID, byte[] signature) throws RemoteException {
+        return (TokenInfo) connection.call(NioProtocol.AUTHENTICATE, userID, signature);
+    }
+
+    @Override
+    public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException {
+        return (AuctionItem) connection.call(NioProtocol.GET_SPEC, userID, itemID, token);
+    }
+
+    @Override
+    public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException {
+        return (Integer) connection.call(NioProtocol.NEW_AUCTION, userID, item, token);
+    }
+
+    @Override
+    public Integer newAuction(String requestID, int userID, AuctionSaleItem item, String token) throws RemoteException {
+        return (Integer) connection.call(NioProtocol.NEW_AUCTION_WITH_ID, requestID, userID, item, token);
+    }
+
+    @Override
+    public AuctionItem[] listItems(int userID, String token) throws RemoteException {
+        return (AuctionItem[]) connection.call(NioProtocol.LIST_ITEMS, userID, token);
+    }
+
+    @Override
+    public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException {
+        return (AuctionResult) connection.call(NioProtocol.CLOSE_AUCTION, userID, itemID, token);
+    }
+
+    @Override
+    public AuctionResult closeAuction(String requestID, int userID, int itemID, String token) throws RemoteException {
+        return (AuctionResult) connection.call(NioProtocol.CLOSE_AUCTION_WITH_ID, requestID, userID, itemID, token);
+    }
+
+    @Override
+    public boolean bid(int userID, int itemID, int price, String token) throws RemoteException {
+        return (Boolean) connection.call(NioProtocol.BID, userID, itemID, price, token);
+    }
+
+    @Override
+    public boolean bid(String requestID, int userID, int itemID, int price, String token) throws RemoteException {
+        return (Boolean) connection.call(NioProtocol.BID_WITH_ID, requestID, userID, itemID, price, token);
+    }
+
+    @Override
+    public int getPrimaryReplicaID() throws RemoteException {
+        return (Integer) connection.call(NioProtocol.GET_PRIMARY_REPLICA_ID);
+    }
+}
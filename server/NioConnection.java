@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.MarshalException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Client end of the NIO transport: one persistent, non-blocking connection shared by every caller.
+// Requests are written as soon as they are made and matched to their responses by
+// requestID, so any number of calls can be pipelined without waiting for earlier ones.
+// Callers write their own requests; every connection in the JVM shares one selector thread
+// that reads the responses and finishes writes the socket buffer had no room for.
+public class NioConnection {
+    private static ClientSelector clientSelector; // Started with the first connection
+
+    private final InetSocketAddress address;
+    private final SocketChannel channel;
+    private final ClientSelector selector;
+    private final Queue<ByteBuffer> out = new ArrayDeque<>(); // Unwritten requests, guarded by itself
+    private final AtomicLong nextRequestID = new AtomicLong();
+    private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+    private SelectionKey key; // Only touched on the selector thread
+    private ByteBuffer in = ByteBuffer.allocate(8192); // Only touched on the selector thread
+
+    public NioConnection(InetSocketAddress address) throws RemoteException {
+        this.address = address;
+        try {
+            this.channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            this.selector = clientSelector();
+        } catch (IOException e) {
+            throw new ConnectException("Connection refused to " + address, e);
+        }
+        selector.run(() -> {
+            try {
+                key = channel.register(selector.selector, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                // Already closed
+                close();
+            }
+        });
+    }
+
+    private static synchronized ClientSelector clientSelector() throws IOException {
+        if (clientSelector == null) {
+            clientSelector = new ClientSelector();
+        }
+        return clientSelector;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    // Sends a request without waiting for the response
+    public CompletableFuture<Object> callAsync(byte op, Object... args) {
+        long requestID = nextRequestID.incrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        ByteBuffer frame;
+        try {
+            frame = NioProtocol.encode(requestID, op, args);
+        } catch (IOException e) {
+            // Bad arguments only fail this call, the connection and other callers' calls are unaffected
+            future.completeExceptionally(new MarshalException("error marshalling arguments", e));
+            return future;
+        }
+        pending.put(requestID, future);
+        try {
+            synchronized (out) {
+                if (out.isEmpty()) {
+                    channel.write(frame);
+                }
+                if (frame.hasRemaining()) {
+                    // Socket buffer full, or earlier requests still queued: the selector thread takes over
+                    out.add(frame);
+                    selector.run(() -> {
+                        if (key != null && key.isValid()) {
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestID);
+            future.completeExceptionally(new ConnectException("Error writing to " + address, e));
+            close();
+        }
+        // The connection may have died between registering and writing
+        if (!open) {
+            pending.remove(requestID);
+            future.completeExceptionally(new ConnectException("Connection to " + address + " closed"));
+        }
+        return future;
+    }
+
+    // Blocking call with the same exception behaviour as an RMI stub
+    public Object call(byte op, Object... args) throws RemoteException {
+        try {
+            return callAsync(op, args).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for " + address, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                throw (RemoteException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ServerException("Exception in remote call to " + address, (Exception) cause);
+        }
+    }
+
+    public void close() {
+        open = false;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        RemoteException closed = new ConnectException("Connection to " + address + " closed");
+        for (Long requestID : pending.keySet()) {
+            CompletableFuture<Object> future = pending.remove(requestID);
+            if (future != null) {
+                future.completeExceptionally(closed);
+            }
+        }
+    }
+
+    // Selector thread: finishes queued writes
+    private void write() throws IOException {
+        synchronized (out) {
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    // Selector thread: reassembles response frames and completes their futures
+    private void read() throws IOException {
+        if (channel.read(in) == -1) {
+            throw new IOException("Connection to " + address + " closed by peer");
+        }
+        in.flip();
+        int needed = 0;
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < NioProtocol.HEADER_SIZE || length > NioProtocol.MAX_FRAME) {
+                throw new IOException("Bad frame length: " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            in.getInt();
+            byte[] body = new byte[length];
+            in.get(body);
+            complete(NioProtocol.decode(body));
+        }
+        in.compact();
+        if (needed > in.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+    }
+
+    private void complete(NioProtocol.Frame response) {
+        CompletableFuture<Object> future = pending.remove(response.requestID);
+        if (future == null) {
+            return;
+        }
+        if (response.code == NioProtocol.OK) {
+            future.complete(response.value(0));
+        } else {
+            Object error = response.value(0);
+            if (error instanceof RemoteException) {
+                // RMI reports remote exceptions thrown by the server wrapped in a ServerException
+                future.completeExceptionally(new ServerException("RemoteException occurred in server thread", (RemoteException) error));
+            } else if (error instanceof Throwable) {
+                future.completeExceptionally((Throwable) error);
+            } else {
+                future.completeExceptionally(new RemoteException("Malformed error response from " + address));
+            }
+        }
+    }
+
+    // One selector thread for all client connections, however many endpoints a process talks to
+    private static final class ClientSelector implements Runnable {
+        final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        ClientSelector() throws IOException {
+            this.selector = Selector.open();
+            Thread thread = new Thread(this, "nio-client");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Key and interest changes happen on the selector thread only
+        void run(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    System.err.println("(NIO) Client selector failed: " + e.getMessage());
+                    return;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Fails everything still in flight on this connection
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyRep;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Wire format shared by NioServer and NioConnection.
+// Every frame is: int length | long requestID | byte code | body, where length counts
+// everything after itself. Requests carry an operation code, responses carry OK/ERROR and
+// echo the requestID so several calls can be in flight on one connection at once.
+// The body is a sequence of tagged values; only values without a compact encoding
+// (keys, payloads, exceptions) fall back to Java serialization.
+public final class NioProtocol {
+    static final int HEADER_SIZE = 8 + 1;
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    // Auction operations
+    static final byte REGISTER = 1;
+    static final byte CHALLENGE = 2;
+    static final byte AUTHENTICATE = 3;
+    static final byte GET_SPEC = 4;
+    static final byte NEW_AUCTION = 5;
+    static final byte LIST_ITEMS = 6;
+    static final byte CLOSE_AUCTION = 7;
+    static final byte BID = 8;
+    static final byte GET_PRIMARY_REPLICA_ID = 9;
+    static final byte SYNC = 10;
+    static final byte REGISTER_WITH_ID = 11;
+    static final byte NEW_AUCTION_WITH_ID = 12;
+    static final byte CLOSE_AUCTION_WITH_ID = 13;
+    static final byte BID_WITH_ID = 14;
+    static final byte GET_PAYLOAD = 15;
+
+    // Directory operations, see NioRegistry
+    static final byte DIR_BIND = 64;
+    static final byte DIR_LOOKUP = 65;
+    static final byte DIR_LIST = 66;
+
+    // Response status
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_INT = 1;
+    private static final byte T_BOOLEAN = 2;
+    private static final byte T_STRING = 3;
+    private static final byte T_BYTES = 4;
+    private static final byte T_OBJECT = 5;
+    private static final byte T_STRINGS = 6;
+    private static final byte T_AUCTION_ITEM = 7;
+    private static final byte T_AUCTION_ITEMS = 8;
+    private static final byte T_AUCTION_SALE_ITEM = 9;
+    private static final byte T_AUCTION_RESULT = 10;
+
+    // Serialized values come straight off the network, so only the types the Auction calls
+    // actually exchange may be deserialized: the model classes, their collections, public keys
+    // (serialized as KeyRep, resolved to the JDK's own key classes) and exceptions from the JDK.
+    private static final Set<Class<?>> SERIAL_ALLOWLIST = Set.of(
+            AuctionItem.class, AuctionSaleItem.class, AuctionResult.class, ChallengeInfo.class, TokenInfo.class,
+            Payload.class, DedupeTable.class, DedupeTable.Entry.class,
+            String.class, Number.class, Integer.class, Long.class, Boolean.class, Enum.class,
+            HashMap.class, LinkedHashMap.class, ArrayList.class, Collections.emptyList().getClass(),
+            StackTraceElement.class, KeyRep.class, KeyRep.Type.class,
+            Object.class, Map.Entry.class); // Only reachable as arrays, checked by ArrayList and HashMap
+    private static final int SERIAL_MAX_DEPTH = 32;
+
+    private static final ObjectInputFilter SERIAL_FILTER = info -> {
+        if (info.depth() > SERIAL_MAX_DEPTH) {
+            return ObjectInputFilter.Status.REJECTED;
+        }
+        Class<?> type = info.serialClass();
+        if (type == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        boolean jdkType = type.getClassLoader() == null || type.getClassLoader() == ClassLoader.getPlatformClassLoader();
+        if (type.isPrimitive() || SERIAL_ALLOWLIST.contains(type)
+                || (jdkType && (Throwable.class.isAssignableFrom(type) || PublicKey.class.isAssignableFrom(type)))) {
+            return ObjectInputFilter.Status.ALLOWED;
+        }
+        return ObjectInputFilter.Status.REJECTED;
+    };
+
+    private NioProtocol() {
+    }
+
+    static final class Frame {
+        final long requestID;
+        final byte code;
+        final Object[] values;
+
+        Frame(long requestID, byte code, Object[] values) {
+            this.requestID = requestID;
+            this.code = code;
+            this.values = values;
+        }
+
+        Object value(int i) {
+            return i < values.length ? values[i] : null;
+        }
+    }
+
+    // Encodes a complete frame, length prefix included, ready to be written to a channel
+    static ByteBuffer encode(long requestID, byte code, Object... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Patched below once the size is known
+        out.writeLong(requestID);
+        out.writeByte(code);
+        for (Object value : values) {
+            writeValue(out, value);
+        }
+        out.flush();
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - 4);
+        return frame;
+    }
+
+    // Decodes a frame whose length prefix has already been consumed
+    static Frame decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long requestID = in.readLong();
+        byte code = in.readByte();
+        List<Object> values = new ArrayList<>();
+        while (in.available() > 0) {
+            values.add(readValue(in));
+        }
+        return new Frame(requestID, code, values.toArray());
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(T_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            // Not writeUTF: that caps strings at 64KB, which RMI does not
+            byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(T_STRING);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(T_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof String[]) {
+            String[] strings = (String[]) value;
+            out.writeByte(T_STRINGS);
+            out.writeInt(strings.length);
+            for (String string : strings) {
+                writeValue(out, string);
+            }
+        } else if (value instanceof AuctionItem) {
+            AuctionItem item = (AuctionItem) value;
+            out.writeByte(T_AUCTION_ITEM);
+            out.writeInt(item.itemID);
+            writeValue(out, item.name);
+            writeValue(out, item.description);
+            out.writeInt(item.highestBid);
+        } else if (value instanceof AuctionItem[]) {
+            AuctionItem[] items = (AuctionItem[]) value;
+            out.writeByte(T_AUCTION_ITEMS);
+            out.writeInt(items.length);
+            for (AuctionItem item : items) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof AuctionSaleItem) {
+            AuctionSaleItem item = (AuctionSaleItem) value;
+            out.writeByte(T_AUCTION_SALE_ITEM);
+            writeValue(out, item.name);
+            writeValue(out, item.description);
+            out.writeInt(item.reservePrice);
+        } else if (value instanceof AuctionResult) {
+            AuctionResult result = (AuctionResult) value;
+            out.writeByte(T_AUCTION_RESULT);
+            writeValue(out, result.winningEmail);
+            out.writeInt(result.winningPrice);
+        } else {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+                oos.writeObject(value);
+            }
+            out.writeByte(T_OBJECT);
+            out.writeInt(serialized.size());
+            serialized.writeTo(out);
+        }
+    }
+
+    // Lengths and element counts come from the peer, never allocate more than the frame actually
+    // holds (every element takes at least its tag byte)
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Bad value length: " + length);
+        }
+        return length;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        return readValue(in, in.readByte());
+    }
+
+    // Fields and array elements: null or exactly the expected type, so values never nest any deeper
+    private static Object readNested(DataInputStream in, byte expected) throws IOException {
+        byte tag = in.readByte();
+        if (tag == T_NULL) {
+            return null;
+        }
+        if (tag != expected) {
+            throw new IOException("Expected value tag " + expected + ", got " + tag);
+        }
+        return readValue(in, tag);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return (String) readNested(in, T_STRING);
+    }
+
+    private static Object readValue(DataInputStream in, byte tag) throws IOException {
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_INT:
+                return in.readInt();
+            case T_BOOLEAN:
+                return in.readBoolean();
+            case T_STRING: {
+                byte[] utf8 = new byte[readLength(in)];
+                in.readFully(utf8);
+                return new String(utf8, StandardCharsets.UTF_8);
+            }
+            case T_BYTES: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case T_STRINGS: {
+                String[] strings = new String[readLength(in)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(in);
+                }
+                return strings;
+            }
+            case T_AUCTION_ITEM:
+                return readAuctionItem(in);
+            case T_AUCTION_ITEMS: {
+                AuctionItem[] items = new AuctionItem[readLength(in)];
+                for (int i = 0; i < items.length; i++) {
+                    items[i] = (AuctionItem) readNested(in, T_AUCTION_ITEM);
+                }
+                return items;
+            }
+            case T_AUCTION_SALE_ITEM: {
+                AuctionSaleItem item = new AuctionSaleItem();
+                item.name = readString(in);
+                item.description = readString(in);
+                item.reservePrice = in.readInt();
+                return item;
+            }
+            case T_AUCTION_RESULT: {
+                AuctionResult result = new AuctionResult();
+                result.winningEmail = readString(in);
+                result.winningPrice = in.readInt();
+                return result;
+            }
+            case T_OBJECT: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    ois.setObjectInputFilter(SERIAL_FILTER);
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown class in frame: " + e.getMessage(), e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static AuctionItem readAuctionItem(DataInputStream in) throws IOException {
+        AuctionItem item = new AuctionItem(0, null, null, 0);
+        item.itemID = in.readInt();
+        item.name = readString(in);
+        item.description = readString(in);
+        item.highestBid = in.readInt();
+        return item;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.rmi.AccessException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Name directory for the NIO transport, the counterpart of rmiregistry.
+// Maps bound names to the "host:port" of the NioServer exporting them.
+// Like rmiregistry, only processes on this host may bind names.
+// Run standalone with: java [-Dauction.nio.host=<host>] NioRegistry [port]
+public class NioRegistry implements NioServer.Handler {
+    private final Map<String, String> bindings = new ConcurrentHashMap<>();
+
+    @Override
+    public Object handle(byte op, Object[] args, InetAddress peer) throws Exception {
+        switch (op) {
+            case NioProtocol.DIR_BIND:
+                if (!isLocal(peer)) {
+                    throw new AccessException("Registry.bind disallowed; origin " + peer + " is non-local host");
+                }
+                bindings.put((String) args[0], args[1] + ":" + args[2]);
+                return null;
+            case NioProtocol.DIR_LOOKUP:
+                return bindings.get((String) args[0]);
+            case NioProtocol.DIR_LIST:
+                return bindings.keySet().toArray(new String[0]);
+            default:
+                throw new RemoteException("Unknown directory operation: " + op);
+        }
+    }
+
+    // Every directory call is a map access
+    @Override
+    public boolean isInline(byte op) {
+        return true;
+    }
+
+    private static boolean isLocal(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+            return true;
+        }
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    public static NioServer start(String host, int port) throws IOException {
+        NioServer server = new NioServer(new InetSocketAddress(host, port), new NioRegistry());
+        server.start();
+        return server;
+    }
+
+    public static void main(String[] args) {
+        String host = System.getProperty("auction.nio.host", "localhost");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : NioTransport.DEFAULT_PORT;
+        try {
+            start(host, port);
+            System.out.println("NioRegistry ready on " + host + ":" + port);
+        } catch (IOException e) {
+            System.err.println("Exception:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import java.rmi.RemoteException;
+
+// ReplicaSync proxy for the NIO transport, plus the matching server-side dispatch.
+public class NioReplicaSyncStub implements ReplicaSync {
+    private final NioConnection connection;
+
+    public NioReplicaSyncStub(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    public static NioServer.Handler skeleton(ReplicaSync target) {
+        return (op, args, peer) -> {
+            switch (op) {
+                case NioProtocol.SYNC:
+                    target.sync((Integer) args[0], (Payload) args[1], (Integer) args[2]);
+                    return null;
+                case NioProtocol.GET_PAYLOAD:
+                    return target.getpayload();
+                default:
+                    throw new RemoteException("Unknown operation: " + op);
+            }
+        };
+    }
+
+    @Override
+    public void sync(int primaryReplicaId, Payload payload, int callerID) throws RemoteException {
+        connection.call(NioProtocol.SYNC, primaryReplicaId, payload, callerID);
+    }
+
+    @Override
+    public Payload getpayload() throws RemoteException {
+        return (Payload) connection.call(NioProtocol.GET_PAYLOAD);
+    }
+}
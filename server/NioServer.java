@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Non-blocking server end of the NIO transport.
+// A single selector thread accepts connections, reassembles frames and writes responses.
+// Calls the handler marks as inline run right there and their response is written at once;
+// every other call goes to a bounded worker pool, so a slow or re-entrant call (a primary
+// syncing its backups) never stalls other requests pipelined on the same connection.
+public class NioServer implements Runnable {
+    public interface Handler {
+        public Object handle(byte op, Object[] args, InetAddress peer) throws Exception;
+
+        // Only for calls that answer from local state without calling out to any server: they
+        // block the selector while they run, and a call that came back here would never be read
+        public default boolean isInline(byte op) {
+            return false;
+        }
+    }
+
+    static final int WORKERS = Integer.getInteger("auction.nio.workers", 16);
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Handler handler;
+    private final ExecutorService workers;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private Thread selectorThread;
+
+    public NioServer(InetSocketAddress address, Handler handler) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        // Threads are only started on demand and retire when idle, a server with no calls holds none
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "nio-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        // Not a daemon: like an exported RMI object, a bound server keeps its JVM alive
+        selectorThread = new Thread(this, "nio-server-" + getPort());
+        selectorThread.start();
+    }
+
+    // Returns once every connection is closed, so a call still running on a worker never gets its reply out
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (selectorThread != null && selectorThread != Thread.currentThread()) {
+            try {
+                selectorThread.join();
+            } catch (InterruptedException e) {
+                // Closing from one of our own workers: shutdownNow() interrupts it once the selector has stopped
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("(NIO) Server on port " + getPort() + " failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException ignored) {
+            }
+            workers.shutdownNow();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        if (conn.channel.read(conn.in) == -1) {
+            closeConnection(key);
+            return;
+        }
+        conn.in.flip();
+        int needed = 0;
+        while (conn.in.remaining() >= 4) {
+            int length = conn.in.getInt(conn.in.position());
+            if (length < NioProtocol.HEADER_SIZE || length > NioProtocol.MAX_FRAME) {
+                throw new IOException("Bad frame length: " + length);
+            }
+            if (conn.in.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            conn.in.getInt();
+            byte[] body = new byte[length];
+            conn.in.get(body);
+            if (handler.isInline(body[8])) { // Operation code follows the requestID
+                ByteBuffer response = dispatch(conn, body);
+                if (response != null) {
+                    conn.out.add(response);
+                    write(key);
+                }
+            } else {
+                workers.execute(() -> respond(conn, dispatch(conn, body)));
+            }
+        }
+        conn.in.compact();
+        if (needed > conn.in.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            conn.in.flip();
+            bigger.put(conn.in);
+            conn.in = bigger;
+        }
+    }
+
+    private ByteBuffer dispatch(Connection conn, byte[] body) {
+        // Read the ID ahead of decoding, so a rejected argument still gets an error back to its caller
+        long requestID = ByteBuffer.wrap(body).getLong();
+        ByteBuffer response;
+        try {
+            NioProtocol.Frame request = NioProtocol.decode(body);
+            try {
+                Object result = handler.handle(request.code, request.values, conn.peer);
+                response = NioProtocol.encode(requestID, NioProtocol.OK, result);
+            } catch (Exception e) {
+                response = NioProtocol.encode(requestID, NioProtocol.ERROR, e);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Undecodable request or unserializable result; the caller would wait forever without a reply
+            try {
+                String reason = e instanceof IOException ? e.getMessage() : e.toString();
+                response = NioProtocol.encode(requestID, NioProtocol.ERROR, new IOException(reason));
+            } catch (IOException impossible) {
+                return null;
+            }
+        }
+        return response;
+    }
+
+    // From a worker: hand the response to the selector thread, the only one writing to channels
+    private void respond(Connection conn, ByteBuffer response) {
+        if (response == null) {
+            return;
+        }
+        conn.out.add(response);
+        selectorTasks.add(() -> {
+            if (conn.key.isValid()) {
+                conn.key.interestOps(conn.key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+        selector.wakeup();
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        ByteBuffer head;
+        while ((head = conn.out.peek()) != null) {
+            conn.channel.write(head);
+            if (head.hasRemaining()) {
+                // Socket buffer full, wait for the next OP_WRITE
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            conn.out.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final InetAddress peer;
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        ByteBuffer in = ByteBuffer.allocate(8192);
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.peer = channel.socket().getInetAddress();
+        }
+    }
+}
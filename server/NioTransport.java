@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// NIO transport: names are resolved through a NioRegistry, every bound Auction is served by
+// a non-blocking NioServer, and all calls to the same endpoint share one pipelined NioConnection.
+public class NioTransport implements Transport {
+    public static final int DEFAULT_PORT = 1100;
+
+    private final String host;
+    private final int port;
+    private final Map<String, NioConnection> connections = new ConcurrentHashMap<>(); // "host:port" -> connection
+    private final Map<Remote, NioServer> servers = new IdentityHashMap<>();
+
+    public NioTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    private NioConnection connect(String endpoint) throws RemoteException {
+        NioConnection connection = connections.get(endpoint);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        synchronized (connections) {
+            connection = connections.get(endpoint);
+            if (connection == null || !connection.isOpen()) {
+                int colon = endpoint.lastIndexOf(':');
+                connection = new NioConnection(new InetSocketAddress(endpoint.substring(0, colon),
+                        Integer.parseInt(endpoint.substring(colon + 1))));
+                connections.put(endpoint, connection);
+            }
+            return connection;
+        }
+    }
+
+    private NioConnection directory() throws RemoteException {
+        return connect(host + ":" + port);
+    }
+
+    @Override
+    public Auction lookup(String name) throws RemoteException, NotBoundException {
+        String endpoint = (String) directory().call(NioProtocol.DIR_LOOKUP, name);
+        if (endpoint == null) {
+            throw new NotBoundException(name);
+        }
+        return new NioAuctionStub(connect(endpoint));
+    }
+
+    @Override
+    public void bind(String name, Auction impl) throws RemoteException {
+        export(name, impl, NioAuctionStub.skeleton(impl));
+    }
+
+    @Override
+    public ReplicaSync lookupSync(String name) throws RemoteException, NotBoundException {
+        String endpoint = (String) directory().call(NioProtocol.DIR_LOOKUP, name);
+        if (endpoint == null) {
+            throw new NotBoundException(name);
+        }
+        return new NioReplicaSyncStub(connect(endpoint));
+    }
+
+    @Override
+    public void bindSync(String name, ReplicaSync impl) throws RemoteException {
+        export(name, impl, NioReplicaSyncStub.skeleton(impl));
+    }
+
+    private void export(String name, Remote impl, NioServer.Handler handler) throws RemoteException {
+        NioServer server;
+        synchronized (servers) {
+            server = servers.get(impl);
+            if (server == null) {
+                try {
+                    // Listen only on the advertised host, not on every interface
+                    server = new NioServer(new InetSocketAddress(host, 0), handler);
+                } catch (IOException e) {
+                    throw new RemoteException("Unable to export " + name, e);
+                }
+                server.start();
+                servers.put(impl, server);
+            }
+        }
+        // Everything runs on the registry's host for now, same assumption as the RMI setup
+        directory().call(NioProtocol.DIR_BIND, name, host, server.getPort());
+    }
+
+    @Override
+    public String[] list() throws RemoteException {
+        return (String[]) directory().call(NioProtocol.DIR_LIST);
+    }
+
+    @Override
+    public void unexport(Remote impl) {
+        NioServer server;
+        synchronized (servers) {
+            server = servers.remove(impl);
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Override
+    public String launchOptions() {
+        return "-Dauction.transport=nio -Dauction.nio.host=" + host + " -Dauction.nio.port=" + port;
+    }
+}
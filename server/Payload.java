@@ -1,7 +1,7 @@
 import java.util.HashMap;
 import java.util.Map;
 
-public class Payload {
+public class Payload implements java.io.Serializable {
     Map<Integer, AuctionItem> auctionItems;
     Map<Integer, String> userInfo;
     Map<Integer, AuctionSaleItem> auctionSaleItems;
@@ -9,9 +9,11 @@ public class Payload {
     Map<Integer, Integer> itemToHighestBid;
     Map<Integer, Integer> auctionSaleItemToCreator;
     Map<Integer, String> replicaTable;
+    DedupeTable dedupeTable;
 
     int itemIDCounter;
     int userIDCounter;
+    long stateVersion; // Bumped by every write on the primary, decides which copy is newer
 
     public Payload() {
         // Initialize other fields
@@ -22,11 +24,6 @@ public class Payload {
         itemToHighestBid = new HashMap<>();
         auctionSaleItemToCreator = new HashMap<>();
         replicaTable = new HashMap<>();
-    }
-
-    public int getSize() {
-        return auctionItems.size() + userInfo.size() + auctionSaleItems.size() +
-                itemToHighestBidder.size() + itemToHighestBid.size() + auctionSaleItemToCreator.size() +
-                replicaTable.size() + itemIDCounter + userIDCounter;
+        dedupeTable = new DedupeTable();
     }
 }
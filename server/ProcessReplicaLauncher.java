@@ -0,0 +1,46 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Default launcher: every replica is its own "java Replica <id>" process.
+// Readiness is taken from the "Server ready" line Replica.main prints once bound,
+// so the FrontEnd no longer races the child's startup.
+public class ProcessReplicaLauncher implements ReplicaLauncher {
+    private static final long READY_TIMEOUT_MILLIS = 10000;
+
+    private final Transport transport;
+
+    public ProcessReplicaLauncher(Transport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void launch(int replicaID) throws Exception {
+        String command = "java " + transport.launchOptions() + " Replica " + replicaID;
+        System.out.println("FE: " + command + " &");
+        Process process = new ProcessBuilder(command.split(" ")).redirectErrorStream(true).start();
+
+        CountDownLatch ready = new CountDownLatch(1);
+        // Keep draining the child's output, otherwise it blocks once the pipe buffer is full
+        Thread pump = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.out.println(line);
+                    if (line.startsWith("Server ready")) {
+                        ready.countDown();
+                    }
+                }
+            } catch (Exception ignored) {
+            }
+            ready.countDown(); // Exited before becoming ready, don't keep the FrontEnd waiting
+        }, "replica-" + replicaID + "-output");
+        pump.setDaemon(true);
+        pump.start();
+
+        if (!ready.await(READY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            System.err.println("(FE) Replica " + replicaID + " not ready after " + READY_TIMEOUT_MILLIS + "ms");
+        }
+    }
+}
@@ -1,13 +1,12 @@
 // Replica.java
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
 import java.security.*;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,19 +17,41 @@ public class Replica implements Auction {
     private Map<Integer, Integer> itemToHighestBidder; // Maps item ID to highest bidder ID
     private Map<Integer, Integer> itemToHighestBid; // Maps item ID to highest bid value
     private Map<Integer, Integer> auctionSaleItemToCreator; // Maps auction sale item ID to creator ID
+    private DedupeTable dedupeTable; // Results of applied requests, for safe retries
     private int itemIDCounter = 3;
     private int userIDCounter = 1;
+    private long stateVersion = 0; // Incremented on every write, see markChanged()
 
     // Replica specific fields
     private int replicaID;
     private int primaryID;
-    private boolean isPrimary = false;
-    private Map<Integer, String> replicaTable; // Keeps track of replicas
+    private volatile boolean isPrimary = false;
+    private Map<Integer, String> replicaTable; // Keeps track of replicas, concurrent as syncs run outside the lock
+    private final Transport transport;
+    private IntConsumer shutdownAction = System::exit; // Takes this replica down with an exit status
+    private Runnable afterReplicate = () -> {}; // Runs once, after the next write is replicated and before it returns
+    // Separate remote object for replica-to-replica calls, so Auction_N stubs do not expose them
+    private final ReplicaSync syncEndpoint = new ReplicaSync() {
+        @Override
+        public void sync(int primaryReplicaId, Payload payload, int callerID) throws RemoteException {
+            Replica.this.sync(primaryReplicaId, payload, callerID);
+        }
+
+        @Override
+        public Payload getpayload() {
+            return Replica.this.getpayload();
+        }
+    };
 
     public Replica(int replicaID) throws RemoteException {
+        this(replicaID, Transport.fromSystemProperties());
+    }
+
+    public Replica(int replicaID, Transport transport) throws RemoteException {
         this.replicaID = replicaID;
+        this.transport = transport;
         this.isPrimary = false; // Initially set as non-primary
-        this.replicaTable = new HashMap<>();
+        this.replicaTable = new ConcurrentHashMap<>();
 
         this.itemToHighestBidder = new HashMap<>();
         this.itemToHighestBid = new HashMap<>();
@@ -40,16 +61,32 @@ public class Replica implements Auction {
         auctionItems = new HashMap<>();
         userInfo = new HashMap<>();
         auctionSaleItems = new HashMap<>();
+        dedupeTable = new DedupeTable();
         System.out.println(debugHeader()+"-Replica Initialized.");
     }
 
+    public static String syncName(int replicaID) {
+        return "Sync_" + replicaID;
+    }
+
+    // Binds the client-facing Auction_N and the replica-only Sync_N endpoints
+    public void export() throws RemoteException {
+        transport.bindSync(syncName(replicaID), syncEndpoint);
+        transport.bind("Auction_" + replicaID, this);
+    }
+
+    public void unexport() throws RemoteException {
+        transport.unexport(this);
+        transport.unexport(syncEndpoint);
+    }
+
     // Sync method to synchronize state with other replicas
     public void sync(int primaryReplicaId, Payload RemotePayload, int callerID) throws RemoteException {
         System.out.println(debugHeader()+"-Sync Syncing with PriRepID: " + primaryReplicaId);
         System.out.println(debugHeader()+"-Sync CallerID: " + callerID);
         DiscoverReplicas();
 
-        // If this is the primary replica, send payload to all other replicas
+        // If this is the primary replica, send payload (its own snapshot) to all other replicas
         if (this.replicaID == primaryReplicaId && this.isPrimary) {
             System.out.println(debugHeader()+"-Sync Syncing state with " + checkAliveReplicas() + " other replicas");
             for (Map.Entry<Integer, String> entry : replicaTable.entrySet()) {
@@ -63,21 +100,17 @@ public class Replica implements Auction {
 
                 String replicaName = entry.getValue();
                 try {
-                    Registry registry = LocateRegistry.getRegistry("localhost");
                     System.out.println(debugHeader()+"-Sync Looking up and syncing replica: " + replicaName);
-                    Replica targetReplica = (Replica) registry.lookup(replicaName);
+                    ReplicaSync targetReplica = transport.lookupSync(syncName(targetID));
                     System.out.println(debugHeader()+"-Sync targetReplica: " + targetReplica);
-                    if (targetReplica == null) {
-                        System.out.println(debugHeader()+"-Sync targetReplica is null - Exiting...");
-                        System.exit(1);
-                    }
-                    targetReplica.sync(this.primaryID, this.getpayload(), this.replicaID); // send payload to replica
+                    targetReplica.sync(this.primaryID, RemotePayload, this.replicaID); // send payload to replica
                     System.out.println(debugHeader()+"-Sync Synced with replica: " + replicaName);
-                    System.out.println(debugHeader()+"-Sync primaryID: " + this.primaryID + " | replicaID: " + targetID + " | payload: " + this.getpayload());
+                    System.out.println(debugHeader()+"-Sync primaryID: " + this.primaryID + " | replicaID: " + targetID + " | payload version: " + RemotePayload.stateVersion);
                 } catch (RemoteException e) {
                     System.err.println(debugHeader()+"-Sync Error syncing with replica " + replicaName + ": " + e.getMessage());
                 } catch (NotBoundException e) {
-                    throw new RuntimeException(e);
+                    // Unbound since DiscoverReplicas ran, nothing to push to
+                    System.err.println(debugHeader()+"-Sync Replica " + replicaName + " is no longer bound");
                 }
             }
         } else {
@@ -88,43 +121,50 @@ public class Replica implements Auction {
     }
 
 
-    public Payload getpayload(){
+    // A copy taken under the lock: payloads are serialized after it is released, while writes carry on
+    public synchronized Payload getpayload(){
         Payload payload = new Payload();
-        payload.auctionItems = auctionItems;
-        payload.userInfo = userInfo;
-        payload.auctionSaleItems = auctionSaleItems;
-        payload.itemToHighestBidder = itemToHighestBidder;
-        payload.itemToHighestBid = itemToHighestBid;
-        payload.auctionSaleItemToCreator = auctionSaleItemToCreator;
-        payload.replicaTable = replicaTable;
+        payload.auctionItems = new HashMap<>(auctionItems);
+        payload.userInfo = new HashMap<>(userInfo);
+        payload.auctionSaleItems = new HashMap<>(auctionSaleItems);
+        payload.itemToHighestBidder = new HashMap<>(itemToHighestBidder);
+        payload.itemToHighestBid = new HashMap<>(itemToHighestBid);
+        payload.auctionSaleItemToCreator = new HashMap<>(auctionSaleItemToCreator);
+        payload.replicaTable = new HashMap<>(replicaTable);
+        payload.dedupeTable = dedupeTable.copy();
         payload.itemIDCounter = itemIDCounter;
         payload.userIDCounter = userIDCounter;
+        payload.stateVersion = stateVersion;
         return payload;
     }
 
-    public void updateStateWithPayload(Payload remotePayload) {
-        System.out.println(debugHeader()+"-updateStateWithPayload UpdatePayload - RemotePL: " + remotePayload + " | SelfPL: " + this.getpayload());
-        if (remotePayload.getSize() > this.getpayload().getSize()) {
+    public synchronized void updateStateWithPayload(Payload remotePayload) {
+        System.out.println(debugHeader()+"-updateStateWithPayload UpdatePayload - Remote version: " + remotePayload.stateVersion + " | Self version: " + this.stateVersion);
+        // Entry counts are no indication of age (auctions close, dedupe entries expire), the write counter is
+        if (remotePayload.stateVersion > this.stateVersion) {
             this.auctionItems = remotePayload.auctionItems;
             this.userInfo = remotePayload.userInfo;
             this.auctionSaleItems = remotePayload.auctionSaleItems;
             this.itemToHighestBidder = remotePayload.itemToHighestBidder;
             this.itemToHighestBid = remotePayload.itemToHighestBid;
             this.auctionSaleItemToCreator = remotePayload.auctionSaleItemToCreator;
-            this.replicaTable = remotePayload.replicaTable;
+            this.replicaTable = new ConcurrentHashMap<>(remotePayload.replicaTable);
+            this.dedupeTable = remotePayload.dedupeTable;
             this.itemIDCounter = remotePayload.itemIDCounter;
             this.userIDCounter = remotePayload.userIDCounter;
-            System.out.println(debugHeader()+"-updateStateWithPayload State updated with larger remote payload.");
+            this.stateVersion = remotePayload.stateVersion;
+            System.out.println(debugHeader()+"-updateStateWithPayload State updated with newer remote payload (version " + stateVersion + ").");
         }
     }
     public void DiscoverReplicas() {
         try {
             System.out.println(debugHeader()+"-DR Discovering replicas...");
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            String[] boundNames = registry.list();
+            String[] boundNames = transport.list();
             if (boundNames.length == 0) {
-                System.out.println(debugHeader()+"-DR FATAL ERROR RMI IS EMPTY. Exiting...");
-                System.exit(1);
+                // Not even this replica is bound, so nothing can reach it any more
+                System.out.println(debugHeader()+"-DR FATAL ERROR RMI IS EMPTY. Shutting down...");
+                shutdownAction.accept(1);
+                return;
             }
             // Pattern to match "Auction_#" names
             Pattern pattern = Pattern.compile("Auction_(\\d+)");
@@ -152,8 +192,7 @@ public class Replica implements Auction {
             Map.Entry<Integer, String> entry = iterator.next();
             try {
                 String replicaName = entry.getValue();
-                Registry registry = LocateRegistry.getRegistry("localhost");
-                Auction replica = (Auction) registry.lookup(replicaName);
+                Auction replica = transport.lookup(replicaName);
                 replica.authenticate(-1, null); // Assuming this method exists in the Auction interface
                 aliveCount++;
             } catch (Exception e) {
@@ -179,23 +218,30 @@ public class Replica implements Auction {
         // ChallangeInfo is now a helper method :>
         System.out.println(debugHeader()+"-CL Received challenge with userID: " + userID + " and clientChallenge: " + clientChallenge);
         if (userID == this.replicaID && clientChallenge.equals("Primary")){
+            if (!this.isPrimary) {
+                // A freshly promoted replica starts empty, catch up from the backups before serving anything
+                pullLatestState();
+            }
             // Assign myself as the primary replica
             this.isPrimary = true;
             // Initialize Sync
-            System.out.println(debugHeader()+"-CL Initializing Sync with payload: " + getpayload());
-            sync(this.replicaID, getpayload(), this.replicaID);
+            Payload snapshot = getpayload();
+            System.out.println(debugHeader()+"-CL Initializing Sync with payload version: " + snapshot.stateVersion);
+            sync(this.replicaID, snapshot, this.replicaID);
         }
         if (userID == -2 && clientChallenge.equals("Init")){
             // Build the auction items as I am the genesis primary replica
             this.initAuctionItems();
-            System.out.println(debugHeader()+"-CL Initialized AuctionItems: " + auctionItems);
+            Payload snapshot = getpayload();
+            System.out.println(debugHeader()+"-CL Initialized AuctionItems: " + snapshot.auctionItems);
+            replicate(snapshot);
         }
         if(!this.isPrimary && clientChallenge.equals("NewPrimary")){
             // Update new primary replica ID
             this.primaryID = userID;
             System.out.println(debugHeader()+"-CL I am new primary replica ID: " + userID);
         }
-        if(this.isPrimary && userID != replicaID){
+        if(this.isPrimary && userID != replicaID && clientChallenge.equals("NewPrimary")){
             // If I were the primary replica but the new primary replica is not me
             // I am no longer the primary replica
             this.isPrimary = false;
@@ -212,40 +258,155 @@ public class Replica implements Auction {
 
     @Override
     public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException {
-        if (isPrimary){
-            return auctionItems.get(itemID);
-        } else {
+        if (!isPrimary){
             // If this is a backup replica, synchronize its state with the primary
             sync(this.primaryID, getpayload(), this.replicaID);
         }
-        return auctionItems.get(itemID);
+        synchronized (this) {
+            return auctionItems.get(itemID);
+        }
     }
 
     @Override
-    public Integer register(String email, PublicKey pubKey) throws RemoteException {
+    public synchronized Integer register(String email, PublicKey pubKey) throws RemoteException {
         // Prevent duplicate registrations
         if (userInfo.containsValue(email)) {
             throw new RemoteException("Email already registered");
         }
         int userID = generateUniqueUserID();
         userInfo.put(userID, email);
+        markChanged();
         return userID;
     }
 
-    private void initAuctionItems() {
+    // Request-ID variants of the mutating calls: a retry of an already applied request
+    // returns the recorded result instead of applying the write again.
+    @Override
+    public Integer register(String requestID, String email, PublicKey pubKey) throws RemoteException {
+        Integer userID;
+        Payload snapshot;
+        synchronized (this) {
+            DedupeTable.Entry applied = dedupeTable.lookup("register", requestID);
+            if (applied != null) {
+                System.out.println(debugHeader()+"-Dedupe Replaying register for request " + requestID);
+                userID = (Integer) applied.result;
+            } else {
+                userID = register(email, pubKey);
+                dedupeTable.record("register", requestID, userID);
+            }
+            snapshot = getpayload();
+        }
+        replicate(snapshot);
+        return userID;
+    }
+
+    @Override
+    public Integer newAuction(String requestID, int userID, AuctionSaleItem item, String token) throws RemoteException {
+        Integer itemID;
+        Payload snapshot;
+        synchronized (this) {
+            DedupeTable.Entry applied = dedupeTable.lookup("newAuction", requestID);
+            if (applied != null) {
+                System.out.println(debugHeader()+"-Dedupe Replaying newAuction for request " + requestID);
+                itemID = (Integer) applied.result;
+            } else {
+                itemID = newAuction(userID, item, token);
+                dedupeTable.record("newAuction", requestID, itemID);
+            }
+            snapshot = getpayload();
+        }
+        replicate(snapshot);
+        return itemID;
+    }
+
+    @Override
+    public AuctionResult closeAuction(String requestID, int userID, int itemID, String token) throws RemoteException {
+        AuctionResult result;
+        Payload snapshot;
+        synchronized (this) {
+            DedupeTable.Entry applied = dedupeTable.lookup("closeAuction", requestID);
+            if (applied != null) {
+                System.out.println(debugHeader()+"-Dedupe Replaying closeAuction for request " + requestID);
+                result = (AuctionResult) applied.result;
+            } else {
+                result = closeAuction(userID, itemID, token);
+                dedupeTable.record("closeAuction", requestID, result);
+            }
+            snapshot = getpayload();
+        }
+        replicate(snapshot);
+        return result;
+    }
+
+    @Override
+    public boolean bid(String requestID, int userID, int itemID, int price, String token) throws RemoteException {
+        boolean accepted;
+        Payload snapshot;
+        synchronized (this) {
+            DedupeTable.Entry applied = dedupeTable.lookup("bid", requestID);
+            if (applied != null) {
+                System.out.println(debugHeader()+"-Dedupe Replaying bid for request " + requestID);
+                accepted = (Boolean) applied.result;
+            } else {
+                accepted = bid(userID, itemID, price, token);
+                dedupeTable.record("bid", requestID, accepted);
+            }
+            snapshot = getpayload();
+        }
+        replicate(snapshot);
+        return accepted;
+    }
+
+    // Pushes the write, together with its dedupe entry, to every backup before it is acknowledged,
+    // so whichever backup's state the next primary starts from already knows the request was applied.
+    // A replay pushes too: the original call may still be pushing, or may have died before it could.
+    // Runs outside the lock; pushes that overtake each other are sorted out by stateVersion on the backups.
+    private void replicate(Payload snapshot) throws RemoteException {
+        if (isPrimary) {
+            sync(this.replicaID, snapshot, this.replicaID);
+        }
+        Runnable hook = afterReplicate;
+        afterReplicate = () -> {};
+        hook.run();
+    }
+
+    // Adopts the newest state held by any reachable replica
+    private void pullLatestState() {
+        DiscoverReplicas();
+        // Copy: adopting a payload replaces replicaTable
+        for (Map.Entry<Integer, String> entry : new HashMap<>(replicaTable).entrySet()) {
+            if (entry.getKey() == this.replicaID) {
+                continue;
+            }
+            try {
+                updateStateWithPayload(transport.lookupSync(syncName(entry.getKey())).getpayload());
+            } catch (Exception e) {
+                System.err.println(debugHeader()+"-Pull Unable to fetch state from " + entry.getValue() + ": " + e.getMessage());
+            }
+        }
+        System.out.println(debugHeader()+"-Pull Caught up to state version " + stateVersion);
+    }
+
+    private synchronized void initAuctionItems() {
         auctionItems.put(1, new AuctionItem(1, "Vintage Watch", "A rare vintage watch from 1950s.", 1000));
         auctionItems.put(2, new AuctionItem(2, "Classic Book", "A first edition of a classic novel.", 500));
         auctionItems.put(3, new AuctionItem(3, "Sports Memorabilia", "A signed baseball from a famous player.", 750));
+        markChanged();
+    }
+
+    private synchronized void markChanged() {
+        stateVersion++;
     }
 
     private synchronized int generateUniqueUserID() {
         return userIDCounter++; // Increment and return the counter
     }
 
-    public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException {
+    public synchronized Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException {
         int itemID = generateUniqueItemID();
         auctionSaleItems.put(itemID, item); // Store the new auction sale item
         auctionSaleItemToCreator.put(itemID, userID); // Associate the item with the creator's userID
+        markChanged();
         return itemID;
     }
 
@@ -253,11 +414,11 @@ public class Replica implements Auction {
         return itemIDCounter++; // Increment and return the counter
     }
 
-    public AuctionItem[] listItems(int userID, String token) throws RemoteException {
+    public synchronized AuctionItem[] listItems(int userID, String token) throws RemoteException {
         return auctionItems.values().toArray(new AuctionItem[0]);
     }
 
-    public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException {
+    public synchronized AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException {
         AuctionItem item = auctionItems.get(itemID);
         AuctionSaleItem saleItem = auctionSaleItems.get(itemID);
         if (saleItem == null) {
@@ -266,12 +427,13 @@ public class Replica implements Auction {
         if (item != null && checkAccessControl(userID, itemID, AccessType.CLOSE_AUCTION)) {
             AuctionResult result = getAuctionResult(itemID);
             auctionItems.remove(itemID); // Remove the item as the auction is now closed
+            markChanged();
             return result;
         }
         throw new RemoteException("Unable to close auction. Either item does not exist or access is denied.");
     }
 
-    public boolean bid(int userID, int itemID, int price, String token) {
+    public synchronized boolean bid(int userID, int itemID, int price, String token) {
         AuctionItem item = auctionItems.get(itemID);
         AuctionSaleItem saleItem = auctionSaleItems.get(itemID);
         if (saleItem == null) {
@@ -286,6 +448,7 @@ public class Replica implements Auction {
         if (item != null && price > currentHighestBid && checkAccessControl(userID, itemID, AccessType.BID)) {
             itemToHighestBid.put(itemID, price);
             itemToHighestBidder.put(itemID, userID);
+            markChanged();
             return true;
         }
         return false;
@@ -315,9 +478,16 @@ public class Replica implements Auction {
     private String debugHeader(){
         return "(Auction_" + this.replicaID + "|isPrimary: " + this.isPrimary + ")";
     }
+    public void setShutdownAction(IntConsumer shutdownAction) {
+        this.shutdownAction = shutdownAction;
+    }
+    // Lets EmbeddedCluster crash a primary in the middle of a call, after the write but before the reply
+    public void setAfterReplicate(Runnable afterReplicate) {
+        this.afterReplicate = afterReplicate;
+    }
     public void suicide(){
         System.out.println(debugHeader()+ " is suiciding with primaryID = " + primaryID);
-        System.exit(0);
+        shutdownAction.accept(0);
     }
     public static void main(String[] args) {
         try {
@@ -329,11 +499,7 @@ public class Replica implements Auction {
             String name = "Auction_" + replicaId;
 
             Replica s = new Replica(replicaId);
-            Auction stub = (Auction) UnicastRemoteObject.exportObject(s, 0);
-            Replica stb = (Replica) UnicastRemoteObject.exportObject(s, 0);
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            registry.rebind(name, stub);
-            registry.rebind("R"+name, stb);
+            s.export();
             System.out.println("Server ready as " + name);
         } catch (Exception e) {
             System.err.println("Exception:");
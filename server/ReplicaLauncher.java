@@ -0,0 +1,5 @@
+// Starts the replica with the given ID for the FrontEnd.
+// launch only returns once the replica is bound and ready to take calls.
+public interface ReplicaLauncher {
+    public void launch(int replicaID) throws Exception;
+}
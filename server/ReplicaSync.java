@@ -0,0 +1,9 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Replica-to-replica state transfer. Kept off Auction so clients looking up the FrontEnd or
+// an Auction_N binding never get these calls; each replica exports it separately as Sync_N.
+public interface ReplicaSync extends Remote {
+    public void sync(int primaryReplicaId, Payload payload, int callerID) throws RemoteException;
+    public Payload getpayload() throws RemoteException;
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Default transport: plain Java RMI against an rmiregistry.
+public class RmiTransport implements Transport {
+    private final String host;
+    private final int port;
+    private final Map<Remote, Remote> exported = new IdentityHashMap<>(); // impl -> stub
+    private final Map<Remote, Sockets> sockets = new IdentityHashMap<>();
+
+    // Server sockets of one exported object. unexportObject only refuses new calls, a call already
+    // running still gets its reply; closing the accepted connections as well makes unexport a crash.
+    private static final class Sockets implements RMIServerSocketFactory {
+        private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port) {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    accepted.removeIf(Socket::isClosed);
+                    accepted.add(socket);
+                    return socket;
+                }
+            };
+        }
+
+        void closeAccepted() {
+            for (Socket socket : accepted) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            accepted.clear();
+        }
+    }
+
+    public RmiTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    private Registry registry() throws RemoteException {
+        return LocateRegistry.getRegistry(host, port);
+    }
+
+    @Override
+    public Auction lookup(String name) throws RemoteException, NotBoundException {
+        return (Auction) registry().lookup(name);
+    }
+
+    @Override
+    public void bind(String name, Auction impl) throws RemoteException {
+        registry().rebind(name, export(impl));
+    }
+
+    @Override
+    public ReplicaSync lookupSync(String name) throws RemoteException, NotBoundException {
+        return (ReplicaSync) registry().lookup(name);
+    }
+
+    @Override
+    public void bindSync(String name, ReplicaSync impl) throws RemoteException {
+        registry().rebind(name, export(impl));
+    }
+
+    private Remote export(Remote impl) throws RemoteException {
+        synchronized (exported) {
+            // An object can only be exported once, reuse the stub when binding it under several names
+            Remote stub = exported.get(impl);
+            if (stub == null) {
+                Sockets factory = new Sockets();
+                stub = UnicastRemoteObject.exportObject(impl, 0, null, factory);
+                exported.put(impl, stub);
+                sockets.put(impl, factory);
+            }
+            return stub;
+        }
+    }
+
+    @Override
+    public String[] list() throws RemoteException {
+        return registry().list();
+    }
+
+    @Override
+    public void unexport(Remote impl) throws RemoteException {
+        synchronized (exported) {
+            if (exported.remove(impl) != null) {
+                UnicastRemoteObject.unexportObject(impl, true);
+                sockets.remove(impl).closeAccepted();
+            }
+        }
+    }
+
+    @Override
+    public String launchOptions() {
+        return "-Dauction.transport=rmi -Dauction.rmi.host=" + host + " -Dauction.rmi.port=" + port;
+    }
+}
@@ -0,0 +1,36 @@
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+
+// Naming and invocation layer underneath the Auction interface.
+// FrontEnd and Replica only ever reach each other through a Transport, so the wire
+// protocol can be picked at startup with -Dauction.transport=rmi|nio (rmi is the default).
+public interface Transport {
+    public Auction lookup(String name) throws RemoteException, NotBoundException;
+    public void bind(String name, Auction impl) throws RemoteException;
+    public String[] list() throws RemoteException;
+
+    // Replica-only endpoints, see ReplicaSync
+    public ReplicaSync lookupSync(String name) throws RemoteException, NotBoundException;
+    public void bindSync(String name, ReplicaSync impl) throws RemoteException;
+
+    // Stops serving impl; its bindings are left behind, as they would be after a crash
+    public void unexport(Remote impl) throws RemoteException;
+
+    // JVM options a child process needs to join the same transport, e.g. "java <options> Replica 3"
+    public String launchOptions();
+
+    public static Transport fromSystemProperties() {
+        String kind = System.getProperty("auction.transport", "rmi");
+        if (kind.equalsIgnoreCase("rmi")) {
+            return new RmiTransport(System.getProperty("auction.rmi.host", "localhost"),
+                    Integer.getInteger("auction.rmi.port", Registry.REGISTRY_PORT));
+        }
+        if (kind.equalsIgnoreCase("nio")) {
+            return new NioTransport(System.getProperty("auction.nio.host", "localhost"),
+                    Integer.getInteger("auction.nio.port", NioTransport.DEFAULT_PORT));
+        }
+        throw new IllegalArgumentException("Unknown auction.transport: " + kind);
+    }
+}